@@ -0,0 +1,117 @@
+package com.rammble.viperion;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * The choices the user made in their last session, stored as a properties file in the user's
+ * home directory so they can be restored the next time the app starts
+ */
+public class SessionSettings {
+
+    private static final File SETTINGS_FILE = new File(System.getProperty("user.home"), ".viperion" + File.separator + "session.properties");
+
+    private static final String IMAGE_FILE = "imageFile";
+    private static final String DIRECTORY = "directory";
+    private static final String NEW_IMAGE_NAME = "newImageName";
+    private static final String OPTION = "option";
+    private static final String OPTION_SETTING = "optionSetting";
+
+    private final Properties properties = new Properties();
+
+    /**
+     * Reads the settings saved by the last session. If there are none, or they can't be read,
+     * the returned settings are empty
+     * @return the last session's settings
+     */
+    public static SessionSettings load() {
+        return load(SETTINGS_FILE);
+    }
+
+    static SessionSettings load(File settingsFile) {
+        SessionSettings settings = new SessionSettings();
+        if (!settingsFile.isFile())
+            return settings;
+
+        try (InputStream in = new FileInputStream(settingsFile)) {
+            settings.properties.load(in);
+        } catch (IOException e) {
+            System.out.println("Could not read the last session.");
+        }
+        return settings;
+    }
+
+    /**
+     * Writes these settings so the next session can restore them
+     */
+    public void save() {
+        save(SETTINGS_FILE);
+    }
+
+    void save(File settingsFile) {
+        try {
+            settingsFile.getParentFile().mkdirs();
+            try (OutputStream out = new FileOutputStream(settingsFile)) {
+                properties.store(out, "Viperion session");
+            }
+        } catch (IOException e) {
+            System.out.println("Could not save the session.");
+        }
+    }
+
+    public File getImageFile() {
+        return toFile(properties.getProperty(IMAGE_FILE));
+    }
+
+    public void setImageFile(File imageFile) {
+        put(IMAGE_FILE, imageFile == null ? null : imageFile.getAbsolutePath());
+    }
+
+    public File getDirectory() {
+        return toFile(properties.getProperty(DIRECTORY));
+    }
+
+    public void setDirectory(File directory) {
+        put(DIRECTORY, directory == null ? null : directory.getAbsolutePath());
+    }
+
+    public String getNewImageName() {
+        return properties.getProperty(NEW_IMAGE_NAME, "");
+    }
+
+    public void setNewImageName(String newImageName) {
+        put(NEW_IMAGE_NAME, newImageName);
+    }
+
+    public String getOption() {
+        return properties.getProperty(OPTION);
+    }
+
+    public void setOption(String option) {
+        put(OPTION, option);
+    }
+
+    public String getOptionSetting() {
+        return properties.getProperty(OPTION_SETTING, "");
+    }
+
+    public void setOptionSetting(String optionSetting) {
+        put(OPTION_SETTING, optionSetting);
+    }
+
+    private void put(String key, String value) {
+        if (value == null)
+            properties.remove(key);
+        else
+            properties.setProperty(key, value);
+    }
+
+    private File toFile(String path) {
+        return path == null ? null : new File(path);
+    }
+}
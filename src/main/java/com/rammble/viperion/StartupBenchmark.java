@@ -0,0 +1,69 @@
+package com.rammble.viperion;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Measures the time from the JVM starting to the window's first frame. When the app is run with
+ * -Dviperion.startupBenchmark=true it exits right after the first frame, with exit code 1 if the
+ * frame took longer than -Dviperion.firstFrameTargetMillis, or exit code 2 if no target was given
+ */
+public class StartupBenchmark {
+
+    static final String ENABLED_PROPERTY = "viperion.startupBenchmark";
+    static final String TARGET_PROPERTY = "viperion.firstFrameTargetMillis";
+
+    /**
+     * Starts watching the scene for its first frame. This should be called before the stage is shown,
+     * and only when the benchmark is enabled
+     * @param scene the scene that is about to be shown
+     */
+    public static void watch(Scene scene) {
+        Runnable[] listener = new Runnable[1];
+        listener[0] = () -> {
+            // the first layout pulse is the last step before the scene is rendered
+            Platform.runLater(() -> scene.removePostLayoutPulseListener(listener[0]));
+            onFirstFrame();
+        };
+        scene.addPostLayoutPulseListener(listener[0]);
+    }
+
+    /**
+     * @return true if the app should exit after the first frame
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    private static void onFirstFrame() {
+        long millis = millisSinceLaunch();
+        System.out.println("First frame after " + millis + " ms");
+
+        // the target comes from the pom, a run without one is misconfigured rather than passing
+        Long target = Long.getLong(TARGET_PROPERTY);
+        if (target == null) {
+            System.out.println("Startup benchmark is not configured, set -D" + TARGET_PROPERTY);
+            System.exit(2);
+        }
+
+        if (millis < 0 || millis > target) {
+            System.out.println("Startup benchmark failed, the target is " + target + " ms");
+            System.exit(1);
+        }
+
+        System.out.println("Startup benchmark passed, the target is " + target + " ms");
+        System.exit(0);
+    }
+
+    /**
+     * @return the milliseconds since the JVM was launched, or -1 if the launch time is unknown
+     */
+    private static long millisSinceLaunch() {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
+    }
+}
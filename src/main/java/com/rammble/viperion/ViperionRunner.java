@@ -16,9 +16,14 @@ public class ViperionRunner extends Application {
         Scene scene = new Scene(fxmlLoader.load());
         stage.setTitle("Hello!");
         stage.setScene(scene);
+        if (StartupBenchmark.isEnabled())
+            StartupBenchmark.watch(scene);
         stage.show();
-        controller = new ViperionView();
+        controller = fxmlLoader.getController();
         controller.stage = stage;
+
+        // the window is already showing, the last session is filled in once it has been read
+        controller.restoreSession();
     }
 
     public static void main(String[] args) {
@@ -1,13 +1,17 @@
 package com.rammble.viperion;
 
+import com.rammble.viperion.ie.CancellationToken;
 import com.rammble.viperion.ie.ImageEditor;
 import com.rammble.viperion.ie.ImageSaveSettings;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -20,8 +24,12 @@ import javafx.stage.Stage;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ViperionView implements Initializable {
     private File imageFile = null, directory = null;
@@ -40,9 +48,18 @@ public class ViperionView implements Initializable {
     private AnchorPane thePane;
     @FXML
     private TextField newImageName, optionSetting;
+    @FXML
+    private ProgressBar generationProgress;
 
     ViperionController controller = new ViperionController();
-    private ImageEditor imageEditor;
+    private Task<Image> generationTask;
+
+    // generations run one at a time, so a superseded one stops before the next one starts
+    private final ExecutorService generations = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "image-generation");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * This is called after the root elements have been added, instantiating the fields we need to add data to
@@ -55,12 +72,6 @@ public class ViperionView implements Initializable {
         Class<ImageSaveSettings> e = ImageSaveSettings.class;
         imageOptionSelector.getItems().addAll(Arrays.stream(e.getEnumConstants()).toList());
         imageOptionSelector.setOnAction(this::updateOptionTextFieldDisplay);
-
-        try {
-            loadSaveData();
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        }
     }
 
     @FXML
@@ -76,6 +87,7 @@ public class ViperionView implements Initializable {
 
             // display the selected file
             displayImage();
+            saveSession();
         } catch (Exception e) {
             displayError(imageFileLabel, "There was an issue with the file you selected, make sure the file is a png or jpg");
         }
@@ -91,6 +103,7 @@ public class ViperionView implements Initializable {
 
             // inform the user
             displayMessage(directoryFileLabel, "Save Location: " + directory.getAbsolutePath());
+            saveSession();
         } catch (Exception e) {
             displayError(directoryFileLabel, "There was an issue with selecting the directory");
         }
@@ -104,6 +117,7 @@ public class ViperionView implements Initializable {
             return;
         }
 
+        saveSession();
         displayImage();
     }
 
@@ -127,26 +141,40 @@ public class ViperionView implements Initializable {
 
                 File outFile = new File(outImagePath);
 
-                // set up the image editor and get the image option selection
-                imageEditor = new ImageEditor(ogImagePath, outImagePath);
+                // get the image option selection and determine if the image needs an option
                 ImageSaveSettings option = imageOptionSelector.getValue();
-
-                // determine if the image needs an option
                 int value;
-                if (imageEditor.needsNumericalOption(option))
+                if (option.getValue() < 0)
                     value = Integer.parseInt(optionSetting.getText());
                 else
                     value = 0;
 
-                // run the ImageEditor
-                imageEditor.saveNewImage(option, value);
-
-                // get the image for displaying
-                Image image = new Image(outFile.toURI().toURL().toExternalForm());
-
-                // display it
-                imageView.setImage(image);
-                displayMessage(generationLabel, "Image was generated");
+                // a new generation replaces the previous one, so stop the old one from using the CPU
+                if (generationTask != null)
+                    generationTask.cancel();
+
+                Task<Image> task = createGenerationTask(ogImagePath, outFile, option, value);
+                generationTask = task;
+
+                task.setOnSucceeded(e -> {
+                    imageView.setImage(task.getValue());
+                    displayMessage(generationLabel, "Image was generated");
+                });
+                task.setOnFailed(e -> {
+                    generationProgress.progressProperty().unbind();
+                    generationProgress.setProgress(0);
+                    displayError(generationLabel, "The image could not be displayed");
+                });
+                task.setOnCancelled(e -> {
+                    generationProgress.progressProperty().unbind();
+                    generationProgress.setProgress(0);
+                });
+
+                generationProgress.progressProperty().bind(task.progressProperty());
+                displayMessage(generationLabel, "Generating image...");
+
+                // run the ImageEditor off the JavaFX thread so the window stays responsive
+                generations.submit(task);
             }
 
 
@@ -155,6 +183,56 @@ public class ViperionView implements Initializable {
         }
     }
 
+    /**
+     * Creates a task that decodes the image, runs the ImageEditor and loads its output for displaying.
+     * The editor writes to a temporary file that is only moved over the output file once the new
+     * image has been decoded successfully, so a cancelled or failed generation leaves the previous output alone
+     *
+     * @param ogImagePath the image to edit
+     * @param outFile where the new image is saved
+     * @param option the effect to apply
+     * @param value the value for effects needing a numerical option
+     * @return the task, which is cancelled when a newer generation starts
+     */
+    private Task<Image> createGenerationTask(String ogImagePath, File outFile, ImageSaveSettings option, int value) {
+        return new Task<>() {
+            private final CancellationToken token = new CancellationToken();
+
+            @Override
+            protected Image call() throws Exception {
+                File tempFile = File.createTempFile(".viperion", ".png", outFile.getAbsoluteFile().getParentFile());
+                try {
+                    // set up the image editor and run it
+                    ImageEditor imageEditor = new ImageEditor(ogImagePath, tempFile.getAbsolutePath());
+                    imageEditor.saveNewImage(option, value, fraction -> updateProgress(fraction, 1), token);
+
+                    if (isCancelled())
+                        return null;
+
+                    // the editor only prints when it can't save, so make sure it wrote a whole image
+                    // before it replaces the previous output
+                    if (tempFile.length() == 0)
+                        throw new IOException("The image could not be generated");
+                    Image image = new Image(tempFile.toURI().toURL().toExternalForm());
+                    if (image.isError())
+                        throw image.getException();
+
+                    Files.move(tempFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    return image;
+                } finally {
+                    Files.deleteIfExists(tempFile.toPath());
+                }
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                // the editor checks its token between rows, so it stops without waiting for the next progress update
+                token.cancel();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+    }
+
     /**
      * Changes the label to a red error message
      * @param label the label to change
@@ -188,28 +266,67 @@ public class ViperionView implements Initializable {
     }
 
     /**
-     * Loads previously saved data
+     * Restores the choices made in the last session without holding up the window. The settings
+     * file is read on a background thread, and the restored image is decoded by JavaFX's background
+     * loader. ImageIO isn't touched here, its plugins are only registered once the first image is generated
      */
-    private void loadSaveData() throws Exception {
-        try {
+    public void restoreSession() {
+        Thread restore = new Thread(() -> {
+            SessionSettings session = SessionSettings.load();
+            Platform.runLater(() -> applySession(session));
+        });
+        restore.setDaemon(true);
+        restore.start();
+    }
 
-            // open image
-            String image = "C:\\Users\\peyto\\OneDrive\\Pictures\\Screenshots\\Screenshot 2023-10-12 140231.png";
-            imageFile = new File(image);
+    /**
+     * Fills in the view from the last session's settings. Anything the user already picked while
+     * the session was loading is kept
+     * @param session the last session's settings
+     */
+    private void applySession(SessionSettings session) {
+        // open image
+        File savedImage = session.getImageFile();
+        if (imageFile == null && savedImage != null && savedImage.isFile()) {
+            imageFile = savedImage;
             displayMessage(imageFileLabel, "Image Selected: " + imageFile.getName());
+            imageView.setImage(new Image(imageFile.toURI().toString(), true));
+        }
 
-            // update view
-            displayImage();
-
-            // open directory
-            String saveLocation = "C:\\Users\\peyto\\Downloads";
-            directory = new File(saveLocation);
+        // open directory
+        File savedDirectory = session.getDirectory();
+        if (directory == null && savedDirectory != null && savedDirectory.isDirectory()) {
+            directory = savedDirectory;
             displayMessage(directoryFileLabel, "Save Location: " + directory.getAbsolutePath());
+        }
 
-            // instantiate imageEditor
-            imageEditor = new ImageEditor(image, saveLocation);
-        } catch (Exception e) {
+        // restore the image name and option
+        if (newImageName.getText().isEmpty())
+            newImageName.setText(session.getNewImageName());
 
+        if (imageOptionSelector.getValue() == null && session.getOption() != null) {
+            try {
+                optionSetting.setText(session.getOptionSetting());
+                imageOptionSelector.setValue(ImageSaveSettings.valueOf(session.getOption()));
+            } catch (IllegalArgumentException e) {
+                // the option no longer exists, leave it unselected
+            }
         }
     }
+
+    /**
+     * Saves the current choices so the next session can restore them
+     */
+    private void saveSession() {
+        SessionSettings session = new SessionSettings();
+        session.setImageFile(imageFile);
+        session.setDirectory(directory);
+        session.setNewImageName(newImageName.getText());
+
+        ImageSaveSettings option = imageOptionSelector.getValue();
+        session.setOption(option == null ? null : option.name());
+        session.setOptionSetting(optionSetting.getText());
+
+        session.save();
+    }
 }
@@ -0,0 +1,31 @@
+package com.rammble.viperion.ie;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Lets another thread ask a running ImageEditor operation to stop. The operation checks the
+ * token between rows (or batches of circles) and stops without saving once it is cancelled
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * Asks every operation using this token to stop as soon as possible
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws a CancellationException if the token has been cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled)
+            throw new CancellationException("The image operation was cancelled.");
+    }
+}
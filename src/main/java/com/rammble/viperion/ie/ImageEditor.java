@@ -3,16 +3,29 @@ package com.rammble.viperion.ie;
 import javafx.scene.shape.Circle;
 
 import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.awt.*;
 import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class ImageEditor {
 
+    // pointillism has no rows to step through, so it checks for cancellation after this many circles
+    private static final int CIRCLES_PER_CHECKPOINT = 1024;
+
     BufferedImage image;
     String saveLocation;
+    OutputStream saveStream;
 
     int imageWidth;
     int imageHeight;
@@ -30,6 +43,27 @@ public class ImageEditor {
         }
     }
 
+    /**
+     * Creates an editor that decodes its image from a stream and writes every generated image
+     * to another stream instead of a file. Neither stream is closed by the editor, and unlike
+     * saving to a file, a failed write is thrown as an UncheckedIOException instead of being printed
+     *
+     * @param imageStream the encoded source image
+     * @param saveStream where the encoded png of the new image is written
+     */
+    public ImageEditor(InputStream imageStream, OutputStream saveStream) throws ITAParseException {
+        try {
+            // cache in memory, otherwise ImageIO copies the stream to a temporary file first
+            this.image = ImageIO.read(new MemoryCacheImageInputStream(imageStream));
+            this.saveStream = saveStream;
+
+            imageWidth = image.getWidth();
+            imageHeight = image.getHeight();
+        } catch (Exception e) {
+            throw new ITAParseException("The provided image stream could not be read.");
+        }
+    }
+
     /**
      * Creates a new image and saves it at the specified location. If an image
      * already exists at that location, it will be overriden. You can specify some
@@ -40,35 +74,50 @@ public class ImageEditor {
      * @param chosenValue the value to be utilized in options requiring specific ratios, sizes, etc
      */
     public void saveNewImage(ImageSaveSettings saveOptions, int chosenValue) {
+        saveNewImage(saveOptions, chosenValue, ProgressListener.NONE, new CancellationToken());
+    }
+
+    /**
+     * Same as saveNewImage, but reports its progress to the listener and stops without saving
+     * once the token is cancelled
+     *
+     * @param saveOptions the options for saving the image
+     * @param chosenValue the value to be utilized in options requiring specific ratios, sizes, etc
+     * @param listener receives the progress of the operation
+     * @param token stops the operation when cancelled
+     * @throws java.util.concurrent.CancellationException if the token was cancelled
+     */
+    public void saveNewImage(ImageSaveSettings saveOptions, int chosenValue, ProgressListener listener, CancellationToken token) {
         if (saveOptions.getValue() >= 0)
-            applyFilter(saveOptions);
+            applyFilter(saveOptions, listener, token);
         else if (saveOptions == ImageSaveSettings.COMPRESS)
-            compressImage(chosenValue);
+            compressImage(chosenValue, listener, token);
         else if (saveOptions == ImageSaveSettings.PIXELATE)
-            pixelate(chosenValue);
+            pixelate(chosenValue, listener, token);
         else if (saveOptions == ImageSaveSettings.POINTILLISM)
-            pointillism(chosenValue);
+            pointillism(chosenValue, listener, token);
 
 
-        System.out.println("Image was saved.");
+        log("Image was saved.");
     }
 
     /**
      * Applies a 1-to-1 filter to an image, changing every pixel based on the desired filter
      * @param saveOptions
+     * @param listener
+     * @param token
      */
-    private void applyFilter(ImageSaveSettings saveOptions) {
+    private void applyFilter(ImageSaveSettings saveOptions, ProgressListener listener, CancellationToken token) {
         int width = imageWidth;
         int height = imageHeight;
 
         // making a new image
         BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 
-        int[][] pixels = new int[width][height];
-
         // setting each pixel in the file
-        for (int y = 0; y < pixels[0].length; y++) {
-            for (int x = 0; x < pixels.length; x++) {
+        for (int y = 0; y < height; y++) {
+            checkpoint(listener, token, y, height);
+            for (int x = 0; x < width; x++) {
                 // get the color
                 int color = image.getRGB(x, y);
 
@@ -80,7 +129,7 @@ public class ImageEditor {
             }
         }
 
-        saveImage(newImage);
+        saveImage(newImage, listener, token);
     }
 
 
@@ -91,6 +140,17 @@ public class ImageEditor {
      * @param compressionMultiplier
      */
     public void compressImage(int compressionMultiplier) {
+        compressImage(compressionMultiplier, ProgressListener.NONE, new CancellationToken());
+    }
+
+    /**
+     * Same as compressImage, but reports its progress and can be cancelled between rows
+     *
+     * @param compressionMultiplier
+     * @param listener
+     * @param token
+     */
+    public void compressImage(int compressionMultiplier, ProgressListener listener, CancellationToken token) {
         if (compressionMultiplier == 0) return;
 
         // calculate the lost pixels
@@ -111,6 +171,7 @@ public class ImageEditor {
 
         // setting each pixel in the file
         for (int y = 0; y < tempHeight; y += compressionMultiplier) {
+            checkpoint(listener, token, y / compressionMultiplier, tempHeight / compressionMultiplier);
             for (int x = 0; x < tempWidth; x += compressionMultiplier) {
 
                 // calculate the average RGB of the area to compress, then apply it to the new image
@@ -122,16 +183,27 @@ public class ImageEditor {
             newImageX = 0;
         }
 
-        saveImage(newImage);
+        saveImage(newImage, listener, token);
 
-        System.out.println("Image was compressed.");
-        System.out.println("The image lost " + pixelWidthLoss + " pixels on the right, and " + pixelHeightLoss + " pixels on the bottom");
+        log("Image was compressed.");
+        log("The image lost " + pixelWidthLoss + " pixels on the right, and " + pixelHeightLoss + " pixels on the bottom");
     }
 
     /**
      * @param pixelSize the length of each new, larger pixel (in pixels)
      */
     public void pixelate(int pixelSize) {
+        pixelate(pixelSize, ProgressListener.NONE, new CancellationToken());
+    }
+
+    /**
+     * Same as pixelate, but reports its progress and can be cancelled between rows
+     *
+     * @param pixelSize the length of each new, larger pixel (in pixels)
+     * @param listener
+     * @param token
+     */
+    public void pixelate(int pixelSize, ProgressListener listener, CancellationToken token) {
         if (pixelSize == 0) return;
 
         // calculate the pixels that will be lost during pixelation
@@ -147,6 +219,7 @@ public class ImageEditor {
 
         // setting each pixel in the file
         for (int y = 0; y < newHeight; y += pixelSize) {
+            checkpoint(listener, token, y / pixelSize, newHeight / pixelSize);
             for (int x = 0; x < newWidth; x += pixelSize) {
                 // get the average color, then paint a square in the new image
                 int averageColor = averageRGB(x, y, pixelSize);
@@ -154,13 +227,24 @@ public class ImageEditor {
             }
         }
 
-        saveImage(newImage);
+        saveImage(newImage, listener, token);
 
-        System.out.println("Image was pixelated.");
-        System.out.println("The image lost " + pixelWidthLoss + " pixels on the right, and " + pixelHeightLoss + " pixels on the bottom");
+        log("Image was pixelated.");
+        log("The image lost " + pixelWidthLoss + " pixels on the right, and " + pixelHeightLoss + " pixels on the bottom");
     }
 
     public void pointillism(int circleDiameter) {
+        pointillism(circleDiameter, ProgressListener.NONE, new CancellationToken());
+    }
+
+    /**
+     * Same as pointillism, but reports its progress and can be cancelled between batches of circles
+     *
+     * @param circleDiameter
+     * @param listener
+     * @param token
+     */
+    public void pointillism(int circleDiameter, ProgressListener listener, CancellationToken token) {
         if (circleDiameter == 0)
             return;
 
@@ -173,29 +257,39 @@ public class ImageEditor {
         // the density (number of circles in the output) should be proportional to the diameter of the desired circle
         int density = (imageWidth * imageHeight) / (circleDiameter);
 
+        // progress is reported once per batch of circles
+        int batches = (density + CIRCLES_PER_CHECKPOINT - 1) / CIRCLES_PER_CHECKPOINT;
+
         int x = 0, y = 0;
 
+        // several editors can run at once, so each thread uses its own random numbers
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
         // get the image data as a 2D array
         for (int i = 0; i < density; i++) {
+            if (i % CIRCLES_PER_CHECKPOINT == 0)
+                checkpoint(listener, token, i / CIRCLES_PER_CHECKPOINT, batches);
+
             try {
                 // get random coordinates
-                x = (int) (Math.random() * imageWidth);
-                y = (int) (Math.random() * imageHeight);
+                x = random.nextInt(imageWidth);
+                y = random.nextInt(imageHeight);
 
                 // draw the circles
                 int averageColor = averageRGB(x, y, circleDiameter);
-                int variance = (int) ((Math.random() * circleDiameter) - (circleDiameter/2));
+                int variance = (int) ((random.nextDouble() * circleDiameter) - (circleDiameter/2));
                 paintCircle(newImage, averageColor, x, y, circleDiameter + variance);
             } catch (Exception exception) {
-                System.out.println("Could not pointilize at point (" + x + ", " + y + ")");
-                exception.printStackTrace();
+                log("Could not pointilize at point (" + x + ", " + y + ")");
+                if (saveStream == null)
+                    exception.printStackTrace();
                 return;
             }
         }
 
-        saveImage(newImage);
+        saveImage(newImage, listener, token);
 
-        System.out.println("Pointillism applied");
+        log("Pointillism applied");
     }
 
     /**
@@ -288,20 +382,90 @@ public class ImageEditor {
     // ==================== HELPERS ==================== //
 
     /**
-     * Saves a new BufferedImage at the specified save location
+     * Called before each row (or batch) of an operation. Stops the operation if the token was
+     * cancelled, and tells the listener how far along it is roughly once per percent
+     *
+     * @param listener
+     * @param token
+     * @param done the amount of work already finished
+     * @param total the total amount of work
+     */
+    private void checkpoint(ProgressListener listener, CancellationToken token, int done, int total) {
+        token.throwIfCancelled();
+
+        // only report when the whole percentage changes
+        if (done == 0 || (long) done * 100 / total != (long) (done - 1) * 100 / total)
+            listener.onProgress((double) done / total);
+    }
+
+    /**
+     * Saves the new image unless the operation was cancelled, then reports the operation as finished
+     *
+     * @param newImage
+     * @param listener
+     * @param token
+     */
+    private void saveImage(BufferedImage newImage, ProgressListener listener, CancellationToken token) {
+        token.throwIfCancelled();
+        saveImage(newImage);
+        listener.onProgress(1);
+    }
+
+    /**
+     * Saves a new BufferedImage at the specified save location, or to the save stream if
+     * the editor was created from streams
      *
      * @param newImage
      */
     private void saveImage(BufferedImage newImage) {
-        try {
-            File f = new File(saveLocation);
+        if (saveStream != null) {
+            // whoever reads the stream has to be able to tell a finished image from a cut off one
+            try {
+                saveImage(newImage, saveStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write the image to the save stream.", e);
+            }
+            return;
+        }
 
-            ImageIO.write(newImage, "png", f);
+        try (OutputStream out = new FileOutputStream(saveLocation)) {
+            saveImage(newImage, out);
         } catch (Exception e) {
             System.out.println("Could not save file.");
         }
     }
 
+    /**
+     * Encodes a new BufferedImage as a png into the provided stream, leaving the stream open
+     *
+     * @param newImage
+     * @param out
+     * @throws IOException if the image could not be encoded or written
+     */
+    private void saveImage(BufferedImage newImage, OutputStream out) throws IOException {
+        // cache in memory, otherwise ImageIO buffers the encoded image in a temporary file
+        ImageOutputStream imageOut = new MemoryCacheImageOutputStream(out);
+        try {
+            if (!ImageIO.write(newImage, "png", imageOut))
+                throw new IOException("No png writer is available.");
+        } finally {
+            // closing the image stream flushes it without closing out
+            imageOut.close();
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints a status message. Editors saving to a stream run as part of another program's job,
+     * so they stay quiet
+     *
+     * @param message
+     */
+    private void log(String message) {
+        if (saveStream == null)
+            System.out.println(message);
+    }
+
     /**
      * With the option, determine if a numerical parameter is needed in order to go through with the ImageEditor action
      * @param option
@@ -0,0 +1,19 @@
+package com.rammble.viperion.ie;
+
+/**
+ * Receives progress updates from a running ImageEditor operation. Updates are sent from the
+ * thread running the operation, at most about once per percent
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    /**
+     * A listener that ignores every update
+     */
+    ProgressListener NONE = fraction -> {};
+
+    /**
+     * @param fraction how much of the operation is done, from 0 to 1
+     */
+    void onProgress(double fraction);
+}
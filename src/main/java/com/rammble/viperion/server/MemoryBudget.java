@@ -0,0 +1,87 @@
+package com.rammble.viperion.server;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of how much memory the decoded images of in-flight jobs are allowed to use.
+ * A job reserves its estimated size before it decodes anything and releases it once its
+ * response has been written
+ */
+public class MemoryBudget {
+
+    // permits are counted in kilobytes so that budgets of several gigabytes still fit in an int
+    private static final int BYTES_PER_PERMIT = 1024;
+
+    private final Semaphore permits;
+    private final int totalPermits;
+
+    /**
+     * @param budgetBytes the total number of bytes concurrent decodes may hold at once
+     */
+    public MemoryBudget(long budgetBytes) {
+        this.totalPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, budgetBytes / BYTES_PER_PERMIT));
+        this.permits = new Semaphore(totalPermits, true);
+    }
+
+    /**
+     * Estimates the memory needed to edit an image. The decoded source is allowed 8 bytes per pixel,
+     * since a 16 bit png with alpha decodes to that, the new image is stored as 4 bytes per pixel, and
+     * the encoded png held for the response is allowed up to 4 bytes per pixel as well (an
+     * incompressible image barely shrinks)
+     *
+     * @param width the width of the source image
+     * @param height the height of the source image
+     * @return the estimated number of bytes
+     */
+    public static long estimate(int width, int height) {
+        return (8L + 4L + 4L) * width * height;
+    }
+
+    /**
+     * Determines if a reservation of this size could ever be admitted
+     * @param bytes the size of the reservation
+     * @return true if the reservation is no bigger than the whole budget
+     */
+    public boolean fits(long bytes) {
+        return toPermits(bytes) <= totalPermits;
+    }
+
+    /**
+     * Waits up to the timeout for the requested amount of memory to become available
+     *
+     * @param bytes the number of bytes to reserve
+     * @param timeoutMillis how long to wait for other jobs to release their memory
+     * @return true if the memory was reserved, false if the timeout ran out first
+     */
+    public boolean tryReserve(long bytes, long timeoutMillis) throws InterruptedException {
+        return permits.tryAcquire(toPermits(bytes), timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gives back memory previously reserved with tryReserve
+     * @param bytes the number of bytes that were reserved
+     */
+    public void release(long bytes) {
+        permits.release(toPermits(bytes));
+    }
+
+    /**
+     * @return the number of bytes currently reserved
+     */
+    public long reservedBytes() {
+        return (long) (totalPermits - permits.availablePermits()) * BYTES_PER_PERMIT;
+    }
+
+    /**
+     * @return the total size of the budget in bytes
+     */
+    public long totalBytes() {
+        return (long) totalPermits * BYTES_PER_PERMIT;
+    }
+
+    private int toPermits(long bytes) {
+        long rounded = (bytes + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT;
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, rounded));
+    }
+}
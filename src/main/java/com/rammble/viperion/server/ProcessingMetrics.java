@@ -0,0 +1,52 @@
+package com.rammble.viperion.server;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters shared by the processing handlers and reported by the /metrics endpoint
+ */
+public class ProcessingMetrics {
+
+    final AtomicLong received = new AtomicLong();
+    final AtomicLong completed = new AtomicLong();
+    final AtomicLong rejectedQueueFull = new AtomicLong();
+    final AtomicLong rejectedMemory = new AtomicLong();
+    final AtomicLong badRequests = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong cancelled = new AtomicLong();
+    final AtomicLong totalProcessingMillis = new AtomicLong();
+    final AtomicLong bytesOut = new AtomicLong();
+
+    /**
+     * Formats the counters together with the current state of the worker pool and memory
+     * budget, one "name value" pair per line
+     *
+     * @param workers the pool running the jobs
+     * @param budget the memory budget the jobs are admitted against
+     * @return the metrics as plain text
+     */
+    public String format(ThreadPoolExecutor workers, MemoryBudget budget) {
+        StringBuilder builder = new StringBuilder();
+        append(builder, "requests_received", received.get());
+        append(builder, "requests_completed", completed.get());
+        append(builder, "requests_rejected_queue_full", rejectedQueueFull.get());
+        append(builder, "requests_rejected_memory", rejectedMemory.get());
+        append(builder, "requests_bad", badRequests.get());
+        append(builder, "requests_failed", failed.get());
+        append(builder, "requests_cancelled", cancelled.get());
+        append(builder, "processing_millis_total", totalProcessingMillis.get());
+        append(builder, "response_bytes_total", bytesOut.get());
+        append(builder, "workers_active", workers.getActiveCount());
+        append(builder, "workers_max", workers.getMaximumPoolSize());
+        append(builder, "queue_depth", workers.getQueue().size());
+        append(builder, "queue_remaining", workers.getQueue().remainingCapacity());
+        append(builder, "memory_reserved_bytes", budget.reservedBytes());
+        append(builder, "memory_budget_bytes", budget.totalBytes());
+        return builder.toString();
+    }
+
+    private void append(StringBuilder builder, String name, long value) {
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+}
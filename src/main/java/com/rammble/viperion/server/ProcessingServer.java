@@ -0,0 +1,401 @@
+package com.rammble.viperion.server;
+
+import com.rammble.viperion.ie.CancellationToken;
+import com.rammble.viperion.ie.ImageEditor;
+import com.rammble.viperion.ie.ImageSaveSettings;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small HTTP server that lets other local processes run the ImageEditor without opening the GUI.
+ *
+ * POST /process?setting=PIXELATE&value=8 with the encoded image as the body answers with the new
+ * image as a png. GET /metrics answers with the server's counters as plain text.
+ *
+ * Jobs run on a bounded pool of workers. When every worker is busy and the queue is full the
+ * request is turned away with a 429, and a job only decodes its image once the memory it needs
+ * has been reserved from the memory budget. Jobs that run longer than the time limit, or are
+ * still running when the server stops, are cancelled between rows and answered with a 503
+ */
+public class ProcessingServer {
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_QUEUE_CAPACITY = 16;
+    private static final long MAX_BODY_BYTES = 64L * 1024 * 1024;
+    private static final long MEMORY_WAIT_MILLIS = 5000;
+    private static final long MAX_JOB_MILLIS = 120_000;
+    // longer than MEMORY_WAIT_MILLIS, so jobs still waiting for memory can answer too
+    private static final long CANCEL_WAIT_SECONDS = 10;
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final MemoryBudget budget;
+    private final ProcessingMetrics metrics = new ProcessingMetrics();
+    private final Set<Job> jobs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a server listening on the loopback address only
+     *
+     * @param port the port to listen on
+     * @param workerCount the number of jobs that may run at once
+     * @param queueCapacity the number of jobs that may wait for a worker before requests are rejected
+     * @param memoryBudgetBytes the number of bytes all decoded images together may use
+     */
+    public ProcessingServer(int port, int workerCount, int queueCapacity, long memoryBudgetBytes) throws IOException {
+        this.budget = new MemoryBudget(memoryBudgetBytes);
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.AbortPolicy());
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+        // the handlers only hand work off to the pool, so they can run on the server's own dispatch thread
+        server.createContext("/process", this::onProcess);
+        server.createContext("/metrics", this::onMetrics);
+        server.setExecutor(null);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Processing server listening on port " + server.getAddress().getPort());
+    }
+
+    /**
+     * Stops taking new jobs, then waits up to the delay for running and queued jobs to send their
+     * responses. Jobs still left after the delay are cancelled and answered with a 503 before the
+     * server's connections are closed
+     * @param delaySeconds how long to wait for running jobs
+     */
+    public void stop(int delaySeconds) {
+        // new requests are answered with a 503 from here on, but the connections of accepted jobs stay open
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(delaySeconds, TimeUnit.SECONDS)) {
+                // queued jobs never start, and running jobs stop at their next row. The workers aren't
+                // interrupted, since an interrupted thread can't write its 503 to the connection
+                List<Runnable> queued = new ArrayList<>();
+                workers.getQueue().drainTo(queued);
+                for (Runnable job : queued)
+                    ((Job) job).reject();
+                for (Job job : jobs)
+                    job.cancel("The server is shutting down");
+
+                if (!workers.awaitTermination(CANCEL_WAIT_SECONDS, TimeUnit.SECONDS))
+                    workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.stop(0);
+    }
+
+    /**
+     * Hands the request to the worker pool, or rejects it right away if the pool is saturated
+     */
+    private void onProcess(HttpExchange exchange) throws IOException {
+        metrics.received.incrementAndGet();
+
+        if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+            metrics.badRequests.incrementAndGet();
+            exchange.getResponseHeaders().set("Allow", "POST");
+            sendText(exchange, 405, "Only POST is supported");
+            return;
+        }
+
+        // the job is tracked before a worker can pick it up, so stop() can always find it
+        Job job = new Job(exchange);
+        jobs.add(job);
+        try {
+            workers.execute(job);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job);
+            if (workers.isShutdown()) {
+                sendText(exchange, 503, "The server is shutting down");
+                return;
+            }
+
+            metrics.rejectedQueueFull.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+            sendText(exchange, 429, "The processing queue is full");
+        }
+    }
+
+    private void onMetrics(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            sendText(exchange, 405, "Only GET is supported");
+            return;
+        }
+
+        sendText(exchange, 200, metrics.format(workers, budget));
+    }
+
+    /**
+     * Reads the request, reserves memory for its image, runs the ImageEditor and writes the new image back
+     */
+    private void runJob(Job job) {
+        HttpExchange exchange = job.exchange;
+        long start = System.currentTimeMillis();
+        long deadline = start + MAX_JOB_MILLIS;
+        long reserved = 0;
+
+        try {
+            // the server may have stopped between this job being dequeued and it starting
+            job.token.throwIfCancelled();
+
+            // determine which effect to apply
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            ImageSaveSettings setting;
+            int value;
+            try {
+                setting = ImageSaveSettings.valueOf(query.getOrDefault("setting", "").toUpperCase());
+                value = Integer.parseInt(query.getOrDefault("value", "0"));
+            } catch (IllegalArgumentException e) {
+                metrics.badRequests.incrementAndGet();
+                sendText(exchange, 400, "Provide a valid setting and a numerical value");
+                return;
+            }
+
+            if (setting.getValue() < 0 && value <= 0) {
+                metrics.badRequests.incrementAndGet();
+                sendText(exchange, 400, setting + " needs a value greater than 0");
+                return;
+            }
+
+            // read the encoded image
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                metrics.badRequests.incrementAndGet();
+                sendText(exchange, 413, "The image is larger than " + MAX_BODY_BYTES + " bytes");
+                return;
+            }
+
+            // find the image's dimensions without decoding its pixels
+            int[] size = readDimensions(body);
+            if (size == null) {
+                metrics.badRequests.incrementAndGet();
+                sendText(exchange, 400, "The request body is not a readable image");
+                return;
+            }
+
+            // compressing or pixelating with a value larger than the image would leave nothing to draw
+            if (setting.getValue() < 0 && value > Math.min(size[0], size[1])) {
+                metrics.badRequests.incrementAndGet();
+                sendText(exchange, 400, setting + " needs a value no larger than the image's smallest side");
+                return;
+            }
+
+            // only decode once there is room for the image, and the body already held, in the memory budget
+            long needed = MemoryBudget.estimate(size[0], size[1]) + body.length;
+            if (!budget.fits(needed)) {
+                metrics.rejectedMemory.incrementAndGet();
+                sendText(exchange, 413, "The image is too large to be processed");
+                return;
+            }
+            if (!budget.tryReserve(needed, MEMORY_WAIT_MILLIS)) {
+                metrics.rejectedMemory.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+                sendText(exchange, 503, "Not enough memory is available to process the image");
+                return;
+            }
+            reserved = needed;
+            job.token.throwIfCancelled();
+
+            // run the editor, giving up once the job runs past its time limit
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageEditor imageEditor = new ImageEditor(new ByteArrayInputStream(body), out);
+            imageEditor.saveNewImage(setting, value, fraction -> {
+                if (System.currentTimeMillis() > deadline)
+                    job.cancel("The job took longer than " + MAX_JOB_MILLIS / 1000 + " seconds");
+            }, job.token);
+
+            // pointillism gives up without saving when it can't paint a circle
+            if (out.size() == 0) {
+                metrics.failed.incrementAndGet();
+                sendText(exchange, 500, "The image could not be generated");
+                return;
+            }
+
+            // stream the new image back
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, out.size());
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                out.writeTo(responseBody);
+            }
+
+            metrics.completed.incrementAndGet();
+            metrics.bytesOut.addAndGet(out.size());
+        } catch (CancellationException e) {
+            metrics.cancelled.incrementAndGet();
+            try {
+                sendText(exchange, 503, job.cancelReason);
+            } catch (IOException ignored) {
+                // the client is gone
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics.failed.incrementAndGet();
+        } catch (Exception e) {
+            metrics.failed.incrementAndGet();
+            try {
+                sendText(exchange, 500, "The image could not be generated");
+            } catch (IOException ignored) {
+                // the client is gone or the headers were already sent
+            }
+        } finally {
+            if (reserved > 0)
+                budget.release(reserved);
+            metrics.totalProcessingMillis.addAndGet(System.currentTimeMillis() - start);
+            exchange.close();
+        }
+    }
+
+    /**
+     * A request waiting for, or running on, a worker. Its token lets the server stop it between rows
+     */
+    private class Job implements Runnable {
+
+        final HttpExchange exchange;
+        final CancellationToken token = new CancellationToken();
+        volatile String cancelReason = "The job was cancelled";
+
+        Job(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void run() {
+            try {
+                runJob(this);
+            } finally {
+                jobs.remove(this);
+            }
+        }
+
+        void cancel(String reason) {
+            cancelReason = reason;
+            token.cancel();
+        }
+
+        /**
+         * Answers a job that never got to run
+         */
+        void reject() {
+            jobs.remove(this);
+            try {
+                sendText(exchange, 503, "The server is shutting down");
+            } catch (IOException ignored) {
+                // the client is gone
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    // ==================== HELPERS ==================== //
+
+    /**
+     * Reads the whole request body, giving up once it grows past the maximum size
+     * @param in the request body
+     * @return the body, or null if it was too large
+     */
+    private byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_BODY_BYTES)
+                return null;
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Reads the width and height from an encoded image's header
+     * @param encoded the encoded image
+     * @return the width at index 0 and the height at index 1, or null if no reader understands the image
+     */
+    private int[] readDimensions(byte[] encoded) {
+        try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(encoded))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext())
+                return null;
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new int[] {reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null)
+            return query;
+
+        for (String pair : rawQuery.split("&")) {
+            int split = pair.indexOf('=');
+            if (split <= 0)
+                continue;
+            query.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    /**
+     * Starts the server. The optional arguments are the port, the number of workers and the
+     * queue capacity. Half of the JVM's maximum heap is used as the memory budget
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int workerCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int queueCapacity = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_QUEUE_CAPACITY;
+        long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+
+        ProcessingServer processingServer = new ProcessingServer(port, workerCount, queueCapacity, memoryBudget);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> processingServer.stop(5)));
+        processingServer.start();
+    }
+}
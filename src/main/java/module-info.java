@@ -5,6 +5,7 @@ module com.rammble.viperion {
     requires org.controlsfx.controls;
     requires org.kordamp.bootstrapfx.core;
     requires java.desktop;
+    requires jdk.httpserver;
 
     opens com.rammble.viperion to javafx.fxml;
     exports com.rammble.viperion;
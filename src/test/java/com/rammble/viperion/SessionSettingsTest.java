@@ -0,0 +1,63 @@
+package com.rammble.viperion;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SessionSettingsTest {
+
+    @TempDir
+    File home;
+
+    @Test
+    void savedSettingsAreLoadedBack() {
+        File settingsFile = new File(home, ".viperion" + File.separator + "session.properties");
+        File imageFile = new File(home, "canvas.png");
+        SessionSettings settings = new SessionSettings();
+        settings.setImageFile(imageFile);
+        settings.setDirectory(home);
+        settings.setNewImageName("inverted");
+        settings.setOption("PIXELATE");
+        settings.setOptionSetting("12");
+
+        settings.save(settingsFile);
+        SessionSettings loaded = SessionSettings.load(settingsFile);
+
+        assertEquals(imageFile.getAbsoluteFile(), loaded.getImageFile());
+        assertEquals(home.getAbsoluteFile(), loaded.getDirectory());
+        assertEquals("inverted", loaded.getNewImageName());
+        assertEquals("PIXELATE", loaded.getOption());
+        assertEquals("12", loaded.getOptionSetting());
+    }
+
+    @Test
+    void clearedSettingsAreNotSaved() {
+        File settingsFile = new File(home, "session.properties");
+        SessionSettings settings = new SessionSettings();
+        settings.setImageFile(new File(home, "canvas.png"));
+        settings.setOption("PIXELATE");
+        settings.setImageFile(null);
+        settings.setOption(null);
+
+        settings.save(settingsFile);
+        SessionSettings loaded = SessionSettings.load(settingsFile);
+
+        assertNull(loaded.getImageFile());
+        assertNull(loaded.getOption());
+    }
+
+    @Test
+    void missingFileLoadsEmptySettings() {
+        SessionSettings loaded = SessionSettings.load(new File(home, "missing.properties"));
+
+        assertNull(loaded.getImageFile());
+        assertNull(loaded.getDirectory());
+        assertEquals("", loaded.getNewImageName());
+        assertNull(loaded.getOption());
+        assertEquals("", loaded.getOptionSetting());
+    }
+}
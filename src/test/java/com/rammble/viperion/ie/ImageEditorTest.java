@@ -0,0 +1,105 @@
+package com.rammble.viperion.ie;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageEditorTest {
+
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 10;
+    private static final int COLOR = ColorHelper.rgb(10, 100, 200);
+
+    @Test
+    void streamRoundTripAppliesTheFilter() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageEditor imageEditor = new ImageEditor(new ByteArrayInputStream(encodedImage()), out);
+
+        imageEditor.saveNewImage(ImageSaveSettings.INVERT_COLORS, 0);
+
+        BufferedImage result = decode(out.toByteArray());
+        assertEquals(WIDTH, result.getWidth());
+        assertEquals(HEIGHT, result.getHeight());
+        assertEquals(ColorHelper.invert(COLOR), result.getRGB(3, 4));
+    }
+
+    @Test
+    void streamRoundTripPixelatesTheImage() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageEditor imageEditor = new ImageEditor(new ByteArrayInputStream(encodedImage()), out);
+
+        imageEditor.saveNewImage(ImageSaveSettings.PIXELATE, 5);
+
+        BufferedImage result = decode(out.toByteArray());
+        assertEquals(WIDTH, result.getWidth());
+        assertEquals(HEIGHT, result.getHeight());
+        assertEquals(COLOR, result.getRGB(WIDTH - 1, HEIGHT - 1));
+    }
+
+    @Test
+    void progressIsReportedUpToOne() throws Exception {
+        List<Double> fractions = new ArrayList<>();
+        ImageEditor imageEditor = new ImageEditor(new ByteArrayInputStream(encodedImage()), new ByteArrayOutputStream());
+
+        imageEditor.saveNewImage(ImageSaveSettings.INVERT_COLORS, 0, fractions::add, new CancellationToken());
+
+        assertEquals(1.0, fractions.get(fractions.size() - 1));
+        for (int i = 1; i < fractions.size(); i++)
+            assertTrue(fractions.get(i) > fractions.get(i - 1));
+    }
+
+    @Test
+    void cancelledTokenStopsBeforeAnythingIsWritten() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageEditor imageEditor = new ImageEditor(new ByteArrayInputStream(encodedImage()), out);
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        assertThrows(CancellationException.class,
+                () -> imageEditor.saveNewImage(ImageSaveSettings.INVERT_COLORS, 0, ProgressListener.NONE, token));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void cancellingWhileProcessingStopsBeforeAnythingIsWritten() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageEditor imageEditor = new ImageEditor(new ByteArrayInputStream(encodedImage()), out);
+        CancellationToken token = new CancellationToken();
+
+        assertThrows(CancellationException.class,
+                () -> imageEditor.saveNewImage(ImageSaveSettings.PIXELATE, 2, fraction -> token.cancel(), token));
+        assertEquals(0, out.size());
+    }
+
+    /**
+     * @return a png filled with a single color
+     */
+    static byte[] encodedImage() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                image.setRGB(x, y, COLOR);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    static BufferedImage decode(byte[] encoded) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(encoded));
+        assertNotNull(image);
+        return image;
+    }
+}
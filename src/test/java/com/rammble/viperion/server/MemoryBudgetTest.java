@@ -0,0 +1,51 @@
+package com.rammble.viperion.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryBudgetTest {
+
+    @Test
+    void totalIsRoundedDownToWholeKilobytes() {
+        MemoryBudget budget = new MemoryBudget(10 * 1024 + 500);
+        assertEquals(10 * 1024, budget.totalBytes());
+    }
+
+    @Test
+    void reservationsAreRoundedUpToWholeKilobytes() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(4 * 1024);
+
+        assertTrue(budget.tryReserve(1, 0));
+        assertEquals(1024, budget.reservedBytes());
+
+        budget.release(1);
+        assertEquals(0, budget.reservedBytes());
+    }
+
+    @Test
+    void fitsOnlyReservationsNoBiggerThanTheBudget() {
+        MemoryBudget budget = new MemoryBudget(4 * 1024);
+        assertTrue(budget.fits(4 * 1024));
+        assertFalse(budget.fits(4 * 1024 + 1));
+    }
+
+    @Test
+    void reservationWaitsForReleasedMemory() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(4 * 1024);
+
+        assertTrue(budget.tryReserve(3 * 1024, 0));
+        assertFalse(budget.tryReserve(2 * 1024, 10));
+
+        budget.release(3 * 1024);
+        assertTrue(budget.tryReserve(2 * 1024, 0));
+        assertEquals(2 * 1024, budget.reservedBytes());
+    }
+
+    @Test
+    void estimateCoversSourceNewImageAndEncodedImage() {
+        assertEquals(16L * 10 * 20, MemoryBudget.estimate(10, 20));
+    }
+}